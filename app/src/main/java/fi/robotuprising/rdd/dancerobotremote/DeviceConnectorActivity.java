@@ -4,7 +4,10 @@
 
 package fi.robotuprising.rdd.dancerobotremote;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
@@ -28,16 +31,28 @@ public class DeviceConnectorActivity extends Activity {
 
     public static String EXTRA_DEVICE_ADDRESS = "device_address";
 
+    // Runs the paired device lookup, replaced in tests to run it on demand
+    static Executor pairedDevicesExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command, "PairedDevicesThread").start();
+        }
+    };
+
     private ArrayAdapter<String> pairedDevicesArrayAdapter;
     private ArrayAdapter<String> newDevicesArrayAdapter;
-    private BluetoothAdapter bluetoothAdapter;
+    // Looked up in the background, so it is null until the paired devices are known
+    private volatile BluetoothAdapter bluetoothAdapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.Section section = StartupTrace.getInstance().begin("DeviceConnectorActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.device_list);
         setResult(Activity.RESULT_CANCELED);
         Button scanButton = findViewById(R.id.button_scan);
+        // Enabled once the adapter is known
+        scanButton.setEnabled(false);
         scanButton.setOnClickListener(new OnClickListener() {
             public void onClick(View v) {
                 doDiscovery();
@@ -64,26 +79,49 @@ public class DeviceConnectorActivity extends Activity {
         filter = new IntentFilter(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
         this.registerReceiver(receiver, filter);
 
-        bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-
-        Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
-
-        boolean empty = true;
+        loadPairedDevices();
+        section.end();
+    }
 
-        if (pairedDevices.size() > 0) {
-            for (BluetoothDevice device : pairedDevices) {
-                if ((device.getBluetoothClass() != null)
-                        && (device.getBluetoothClass().getDeviceClass() == BluetoothClass.Device.TOY_ROBOT)) {
-                    pairedDevicesArrayAdapter.add(device.getName() + "\n"
-                            + device.getAddress());
-                    empty = false;
+    /**
+     * Looking up the adapter and enumerating bonded devices both query the Bluetooth service,
+     * so they are done on a background thread and the list is filled in once it is known.
+     */
+    private void loadPairedDevices() {
+        pairedDevicesExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.Section section = StartupTrace.getInstance().begin("DeviceConnectorActivity.loadPairedDevices");
+                bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+                Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
+
+                final List<String> names = new ArrayList<>();
+                for (BluetoothDevice device : pairedDevices) {
+                    if ((device.getBluetoothClass() != null)
+                            && (device.getBluetoothClass().getDeviceClass() == BluetoothClass.Device.TOY_ROBOT)) {
+                        names.add(device.getName() + "\n"
+                                + device.getAddress());
+                    }
                 }
+                section.end();
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        findViewById(R.id.button_scan).setEnabled(true);
+                        if (names.isEmpty()) {
+                            return;
+                        }
+                        pairedDevicesArrayAdapter.addAll(names);
+                        findViewById(R.id.title_paired_devices).setVisibility(View.VISIBLE);
+                        findViewById(R.id.no_devices).setVisibility(View.GONE);
+                    }
+                });
             }
-        }
-        if (!empty) {
-            findViewById(R.id.title_paired_devices).setVisibility(View.VISIBLE);
-            findViewById(R.id.no_devices).setVisibility(View.GONE);
-        }
+        });
     }
 
     @Override
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.UUID;
 
 import android.bluetooth.BluetoothAdapter;
@@ -24,21 +25,26 @@ public class DeviceMessageSender {
     public static final int STATE_CONNECTING = 1;
     public static final int STATE_CONNECTED = 2;
     
+    private static final int NO_POWER = Integer.MIN_VALUE;
+    private static final long WRITE_STALL_MICROS = 20000;
+    
+    private final Metrics metrics = Metrics.getInstance();
+    private boolean everConnected = false;
+    
     private int state;
     private Handler handler;
-    private BluetoothAdapter bluetoothAdapter;
     
     private ConnectThread connectThread;
     private ConnectedThread connectedThread;
     
     public DeviceMessageSender(Handler handler) {
-        bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         this.handler = handler;
         setState(STATE_NONE);
     }
 
     private synchronized void setState(int state) {
         this.state = state;
+        metrics.connectionState.set(state);
         if (handler != null) {
             handler.obtainMessage(MainActivity.MESSAGE_STATE_CHANGE, state, -1).sendToTarget();
         }
@@ -63,6 +69,10 @@ public class DeviceMessageSender {
     }
 
     public synchronized void connect(BluetoothDevice device) {
+        if (everConnected) {
+            metrics.reconnects.increment();
+        }
+        
         if (state == STATE_CONNECTING) {
             if (connectThread != null) {
                 connectThread.cancel();
@@ -93,6 +103,7 @@ public class DeviceMessageSender {
         
         connectedThread = new ConnectedThread(socket);
         connectedThread.start();
+        everConnected = true;
         
         showMessage("Connected to " + device.getName());
         
@@ -137,18 +148,16 @@ public class DeviceMessageSender {
         }
         
         data[5] = power;
-        write(data);
-    }
-    
-    private void write(byte[] out) {
+        
         ConnectedThread r;
         synchronized (this) {
             if (state != STATE_CONNECTED) {
+                metrics.droppedCommands.increment();
                 return;
             }
             r = connectedThread;
         }
-        r.write(out);
+        r.sendMotorCommand(data[4], data);
     }
     
     private class ConnectThread extends Thread {
@@ -161,7 +170,7 @@ public class DeviceMessageSender {
         
         public void run() {
             setName("ConnectThread");
-            bluetoothAdapter.cancelDiscovery();
+            BluetoothAdapter.getDefaultAdapter().cancelDiscovery();
             
             try {
                 mmSocket = mmDevice.createRfcommSocketToServiceRecord(UUID.fromString("00001101-0000-1000-8000-00805F9B34FB"));
@@ -209,8 +218,12 @@ public class DeviceMessageSender {
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
         
+        // Power last sent to each motor on this connection, guarded by this thread's monitor
+        private final int[] lastPower = new int[3];
+        
         public ConnectedThread(BluetoothSocket socket) {
             mmSocket = socket;
+            Arrays.fill(lastPower, NO_POWER);
             InputStream tmpIn = null;
             OutputStream tmpOut = null;
             
@@ -239,12 +252,43 @@ public class DeviceMessageSender {
             }
         }
         
-        public void write(byte[] buffer) {
+        /**
+         * Sends a motor command unless the motor is already running at that power. The robot keeps
+         * running at the last power it was given, so repeating it is redundant. Checking, writing
+         * and recording the power is atomic, so commands from different threads can not leave
+         * lastPower out of step with the robot.
+         */
+        public synchronized void sendMotorCommand(int motor, byte[] data) {
+            byte power = data[5];
+            if (lastPower[motor] == power) {
+                metrics.coalescedCommands.increment();
+                return;
+            }
+            
+            if (write(data)) {
+                lastPower[motor] = power;
+                metrics.motorCommands(motor).increment();
+            } else {
+                lastPower[motor] = NO_POWER;
+                metrics.droppedCommands.increment();
+            }
+        }
+        
+        private boolean write(byte[] buffer) {
+            long start = System.nanoTime();
             try {
                 mmOutStream.write(buffer);
             } catch (IOException e) {
                 e.printStackTrace();
+                return false;
+            }
+            long micros = (System.nanoTime() - start) / 1000;
+            metrics.bytesWritten.add(buffer.length);
+            metrics.lastWriteMicros.set(micros);
+            if (micros > WRITE_STALL_MICROS) {
+                metrics.writeStalls.increment();
             }
+            return true;
         }
         
         public void cancel() {
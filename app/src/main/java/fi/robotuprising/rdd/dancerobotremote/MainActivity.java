@@ -5,10 +5,15 @@
  */
 package fi.robotuprising.rdd.dancerobotremote;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.content.Intent;
+import android.content.pm.ActivityInfo;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -28,24 +33,47 @@ public class MainActivity extends Activity {
 
 	public static final int MESSAGE_TOAST = 1;
 	public static final int MESSAGE_STATE_CHANGE = 2;
+	public static final int MESSAGE_BLUETOOTH_READY = 3;
 
 	private static final int REQUEST_ENABLE_BT = 1;
 	private static final int REQUEST_CONNECT_DEVICE = 2;
 
+	private static final String STATE_TILT_ENABLED = "tilt_enabled";
+
+	// Runs the Bluetooth adapter lookup, replaced in tests to run it on demand
+	static Executor bluetoothExecutor = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			new Thread(command, "BluetoothInitThread").start();
+		}
+	};
+
 	private BluetoothAdapter bluetoothAdapter;
 	private String deviceAddress;
 	private DeviceMessageSender messageSender;
+	private TiltController tiltController;
+	private boolean tiltEnabled = false;
 	private int state = DeviceMessageSender.STATE_NONE;
 	private int savedState = DeviceMessageSender.STATE_NONE;
 	private TextView stateDisplay;
 	private boolean bluetoothAvailable = false;
 	private boolean firstLaunch = true;
+	private boolean started = false;
     private Menu menu;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
+		StartupTrace trace = StartupTrace.getInstance();
+		StartupTrace.Section onCreateSection = trace.begin("MainActivity.onCreate");
 		super.onCreate(savedInstanceState);
+		if (savedInstanceState != null) {
+			// The orientation lock survives recreation, so tilt mode has to as well
+			tiltEnabled = savedInstanceState.getBoolean(STATE_TILT_ENABLED);
+		}
+
+		StartupTrace.Section layoutSection = trace.begin("MainActivity.setContentView");
 		setContentView(R.layout.activity_main);
+		layoutSection.end();
 
 		View area1 = findViewById(R.id.area1);
 		area1.setOnTouchListener(new AreaOnTouchListener());
@@ -54,25 +82,60 @@ public class MainActivity extends Activity {
 		View area3 = findViewById(R.id.area3);
 		area3.setOnTouchListener(new AreaOnTouchListener());
 
-		if (!bluetoothAvailable) {
-			bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+		this.messageSender = new DeviceMessageSender(handler);
+		this.tiltController = new TiltController(this, messageSender);
 
-			if (bluetoothAdapter == null) {
-				Toast.makeText(this, "Bluetooth is not available",
-						Toast.LENGTH_LONG).show();
-				finish();
-				return;
-			}
+		stateDisplay = (TextView) findViewById(R.id.state_display);
+
+		if (!bluetoothAvailable) {
+			initBluetooth();
 		}
+		onCreateSection.end();
+	}
 
-		this.messageSender = new DeviceMessageSender(handler);
+	/**
+	 * Looks up the Bluetooth adapter off the main thread so the controls can be drawn first.
+	 * The result is delivered to the handler as MESSAGE_BLUETOOTH_READY.
+	 */
+	private void initBluetooth() {
+		bluetoothExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				StartupTrace.Section section = StartupTrace.getInstance().begin("MainActivity.initBluetooth");
+				BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+				section.end();
+				handler.obtainMessage(MESSAGE_BLUETOOTH_READY, adapter).sendToTarget();
+			}
+		});
+	}
 
-		stateDisplay = (TextView) findViewById(R.id.state_display);
+	private void onBluetoothReady(BluetoothAdapter adapter) {
+		if (adapter == null) {
+			Toast.makeText(this, "Bluetooth is not available",
+					Toast.LENGTH_LONG).show();
+			finish();
+			return;
+		}
+		bluetoothAdapter = adapter;
+		StartupTrace.getInstance().mark("MainActivity.bluetoothReady");
+		if (started) {
+			setupBluetooth();
+		}
 	}
 
 	@Override
 	protected void onStart() {
 		super.onStart();
+		started = true;
+		if (bluetoothAdapter != null) {
+			setupBluetooth();
+		}
+		if (tiltEnabled) {
+			tiltController.start();
+		}
+	}
+
+	private void setupBluetooth() {
 		if (!bluetoothAvailable) {
 			if (!bluetoothAdapter.isEnabled()) {
 				Intent enableIntent = new Intent(
@@ -96,6 +159,8 @@ public class MainActivity extends Activity {
 	@Override
 	protected void onStop() {
 		super.onStop();
+		started = false;
+		tiltController.stop();
 		savedState = state;
 		messageSender.stop();
 	}
@@ -104,10 +169,17 @@ public class MainActivity extends Activity {
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
         inflater.inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_tilt).setChecked(tiltEnabled);
         this.menu = menu;
         return true;
     }
 
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putBoolean(STATE_TILT_ENABLED, tiltEnabled);
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 		int id = item.getItemId();
@@ -124,6 +196,28 @@ public class MainActivity extends Activity {
             messageSender.stop();
 			return true;
 		}
+		else if (id == R.id.action_tilt) {
+			if (!tiltController.isAvailable()) {
+				Toast.makeText(this, "Tilt sensor is not available",
+						Toast.LENGTH_SHORT).show();
+				return true;
+			}
+			tiltEnabled = !item.isChecked();
+			item.setChecked(tiltEnabled);
+			if (tiltEnabled) {
+				// Tilting the phone must not rotate the screen under the tilt mapping
+				setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
+				tiltController.start();
+			} else {
+				tiltController.stop();
+				setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+			}
+			return true;
+		}
+		else if (id == R.id.action_stats) {
+			startActivity(new Intent(this, StatsActivity.class));
+			return true;
+		}
 		return super.onOptionsItemSelected(item);
 	}
 
@@ -138,11 +232,21 @@ public class MainActivity extends Activity {
 						.getRemoteDevice(address);
 				deviceAddress = address;
 				messageSender.connect(device);
+			} else {
+				// Nothing left to wait for, so startup ends here
+				StartupTrace.getInstance().finish("MainActivity.deviceNotSelected");
 			}
 			break;
 		}
 	}
 
+	@Override
+	public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+		super.dump(prefix, fd, writer, args);
+		Metrics.getInstance().dump(prefix, writer);
+		StartupTrace.getInstance().dump(prefix, writer);
+	}
+
 	private void displayState() {
 		String stateText = null;
 		int color = 0;
@@ -194,6 +298,12 @@ public class MainActivity extends Activity {
 			case MESSAGE_STATE_CHANGE:
 				state = msg.arg1;
 				displayState();
+				if (state == DeviceMessageSender.STATE_CONNECTED) {
+					StartupTrace.getInstance().finish("MainActivity.readyToDrive");
+				}
+				break;
+			case MESSAGE_BLUETOOTH_READY:
+				onBluetoothReady((BluetoothAdapter) msg.obj);
 				break;
 			}
 		}
@@ -203,10 +313,25 @@ public class MainActivity extends Activity {
 
 		@Override
 		public boolean onTouch(View v, MotionEvent event) {
+			long start = System.nanoTime();
+			handleTouch(v, event);
+			long micros = (System.nanoTime() - start) / 1000;
+
+			Metrics metrics = Metrics.getInstance();
+			metrics.touchEvents.increment();
+			metrics.touchMicros.add(micros);
+			metrics.maxTouchMicros.setMax(micros);
+			return true;
+		}
+
+		private void handleTouch(View v, MotionEvent event) {
 			ControlsView area = (ControlsView) v;
 			String name = getResources().getResourceName(v.getId());
 			int areaNumber = Integer.parseInt(name.substring(name.length() - 1));
 			int motorNumber = getMotorNumber(areaNumber);
+			if (tiltController.drivesMotor(motorNumber)) {
+				return;
+			}
 
 			float y;
 			int action = event.getAction();
@@ -229,7 +354,6 @@ public class MainActivity extends Activity {
 				updateStickPosition(0, areaNumber);
 				messageSender.driveMotor(motorNumber, (byte) 0);
 			}
-			return true;
 		}
 		
 		private int getMotorNumber(int areaNumber) {
@@ -0,0 +1,179 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.SystemClock;
+
+/**
+ * Process wide registry of runtime counters and gauges. Updates are lock-free so they can be
+ * done from the UI thread and the Bluetooth threads without contention.
+ */
+public class Metrics {
+
+    private static final Metrics instance = new Metrics();
+
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    private final List<Counter> counters = new ArrayList<>();
+    private final List<Gauge> gauges = new ArrayList<>();
+
+    private final Counter[] motorCommands = {
+            counter("commands.motor0"),
+            counter("commands.motor1"),
+            counter("commands.motor2")
+    };
+    public final Counter bytesWritten = counter("bytes.written");
+    public final Counter writeStalls = counter("write.stalls");
+    public final Counter coalescedCommands = counter("commands.coalesced");
+    public final Counter droppedCommands = counter("commands.dropped");
+    public final Counter reconnects = counter("reconnects");
+    public final Counter touchEvents = counter("touch.events");
+    public final Counter touchMicros = counter("touch.us");
+    public final Counter tiltSamples = counter("tilt.samples");
+    public final Counter tiltUpdates = counter("tilt.updates");
+
+    public final Gauge connectionState = gauge("connection.state");
+    public final Gauge lastWriteMicros = gauge("write.last.us");
+    public final Gauge maxTouchMicros = gauge("touch.max.us");
+
+    private Metrics() {
+    }
+
+    private Counter counter(String name) {
+        Counter counter = new Counter(name);
+        counters.add(counter);
+        return counter;
+    }
+
+    private Gauge gauge(String name) {
+        Gauge gauge = new Gauge(name);
+        gauges.add(gauge);
+        return gauge;
+    }
+
+    public Counter motorCommands(int motor) {
+        return motorCommands[motor];
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Metrics:");
+        writer.println(String.format(Locale.US, "%s  %-20s %12s %10s %10s",
+                prefix, "counter", "total", "1s", "1min"));
+        for (Counter counter : counters) {
+            writer.println(String.format(Locale.US, "%s  %-20s %12d %10d %10d",
+                    prefix, counter.getName(), counter.getTotal(),
+                    counter.getLastSecond(), counter.getLastMinute()));
+        }
+        for (Gauge gauge : gauges) {
+            writer.println(String.format(Locale.US, "%s  %-20s %12d",
+                    prefix, gauge.getName(), gauge.get()));
+        }
+        long touches = touchEvents.getLastMinute();
+        if (touches > 0) {
+            writer.println(String.format(Locale.US, "%s  onTouch avg %d us over last minute",
+                    prefix, touchMicros.getLastMinute() / touches));
+        }
+    }
+
+    /**
+     * Event counter with a running total and one bucket per second for the last minute.
+     * An increment racing with a bucket rollover may get lost, which is fine for diagnostics.
+     */
+    public static class Counter {
+        private static final int BUCKETS = 60;
+
+        private final String name;
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLongArray seconds = new AtomicLongArray(BUCKETS);
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public void add(long n) {
+            total.addAndGet(n);
+            long second = currentSecond();
+            int index = (int) (second % BUCKETS);
+            long stamp = seconds.get(index);
+            if (stamp != second && seconds.compareAndSet(index, stamp, second)) {
+                counts.set(index, 0);
+            }
+            counts.addAndGet(index, n);
+        }
+
+        public long getTotal() {
+            return total.get();
+        }
+
+        /** Count for the last complete second. */
+        public long getLastSecond() {
+            long second = currentSecond() - 1;
+            int index = (int) (second % BUCKETS);
+            return seconds.get(index) == second ? counts.get(index) : 0;
+        }
+
+        /** Count for the last sixty complete seconds. */
+        public long getLastMinute() {
+            long second = currentSecond();
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long stamp = seconds.get(i);
+                if (stamp < second && stamp >= second - BUCKETS) {
+                    sum += counts.get(i);
+                }
+            }
+            return sum;
+        }
+
+        private static long currentSecond() {
+            return SystemClock.elapsedRealtime() / 1000;
+        }
+    }
+
+    public static class Gauge {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Gauge(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void set(long value) {
+            this.value.set(value);
+        }
+
+        public void setMax(long value) {
+            long current;
+            do {
+                current = this.value.get();
+                if (value <= current) {
+                    return;
+                }
+            } while (!this.value.compareAndSet(current, value));
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+}
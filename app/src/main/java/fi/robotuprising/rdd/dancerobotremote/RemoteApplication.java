@@ -0,0 +1,13 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import android.app.Application;
+
+public class RemoteApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Fixes the startup origin as early as possible on devices without a process start time.
+        StartupTrace.getInstance();
+    }
+}
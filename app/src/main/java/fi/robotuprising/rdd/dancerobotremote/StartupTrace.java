@@ -0,0 +1,130 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+/**
+ * Records startup phases both as systrace sections and as timings relative to process start,
+ * so they can be read back from dumpsys or from a test. Phases are only kept until the remote
+ * is connected and ready to drive, or the user backs out of the device picker; later sections
+ * still show up in systrace.
+ *
+ * Before API 24 the process start time is not available, and offsets are relative to
+ * RemoteApplication.onCreate instead.
+ */
+public class StartupTrace {
+
+    private static final StartupTrace instance = new StartupTrace();
+
+    public static StartupTrace getInstance() {
+        return instance;
+    }
+
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+    private volatile long originMillis;
+    private volatile boolean finished;
+
+    private StartupTrace() {
+        reset();
+    }
+
+    void reset() {
+        phases.clear();
+        finished = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            originMillis = Process.getStartUptimeMillis();
+        } else {
+            originMillis = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Starts a phase. The returned section must be ended on the same thread.
+     */
+    public Section begin(String name) {
+        Trace.beginSection(name);
+        return new Section(name);
+    }
+
+    /**
+     * Records a point in time, such as the moment the remote is ready to drive.
+     */
+    public void mark(String name) {
+        record(new Phase(name, SystemClock.uptimeMillis() - originMillis, 0));
+    }
+
+    /**
+     * Records the last startup phase. Nothing is recorded after this until reset.
+     */
+    public void finish(String name) {
+        mark(name);
+        finished = true;
+    }
+
+    private void record(Phase phase) {
+        if (!finished) {
+            phases.add(phase);
+        }
+    }
+
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    /**
+     * Returns the most recent phase with the given name, or null.
+     */
+    public Phase getPhase(String name) {
+        Phase found = null;
+        for (Phase phase : phases) {
+            if (phase.name.equals(name)) {
+                found = phase;
+            }
+        }
+        return found;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Startup:");
+        for (Phase phase : phases) {
+            writer.println(String.format(Locale.US, "%s  %-36s at %6d ms, took %6d us",
+                    prefix, phase.name, phase.startMillis, phase.durationMicros));
+        }
+    }
+
+    public class Section {
+        private final String name;
+        private final long startMillis = SystemClock.uptimeMillis();
+        private final long startNanos = System.nanoTime();
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        public void end() {
+            long micros = (System.nanoTime() - startNanos) / 1000;
+            Trace.endSection();
+            record(new Phase(name, startMillis - originMillis, micros));
+        }
+    }
+
+    public static class Phase {
+        public final String name;
+        public final long startMillis;
+        public final long durationMicros;
+
+        Phase(String name, long startMillis, long durationMicros) {
+            this.name = name;
+            this.startMillis = startMillis;
+            this.durationMicros = durationMicros;
+        }
+    }
+}
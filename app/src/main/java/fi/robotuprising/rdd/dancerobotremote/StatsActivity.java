@@ -0,0 +1,49 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.os.Handler;
+import android.widget.TextView;
+
+public class StatsActivity extends Activity {
+
+    private static final long REFRESH_INTERVAL_MS = 1000;
+
+    private final Handler handler = new Handler();
+    private TextView statsDisplay;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.stats);
+        statsDisplay = findViewById(R.id.stats_display);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            StringWriter text = new StringWriter();
+            PrintWriter writer = new PrintWriter(text);
+            Metrics.getInstance().dump("", writer);
+            StartupTrace.getInstance().dump("", writer);
+            writer.flush();
+            statsDisplay.setText(text.toString());
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+}
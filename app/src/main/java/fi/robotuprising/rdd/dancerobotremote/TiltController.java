@@ -0,0 +1,207 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Display;
+import android.view.Surface;
+import android.view.WindowManager;
+
+/**
+ * Drives the left and right motors by tilting the phone. Tilting forward and back sets the
+ * common power, tilting sideways steers.
+ *
+ * Accelerometer samples are batched by the hardware and delivered to a background thread. All samples
+ * received during one tick are averaged into a single motor update.
+ *
+ * While running, the controller owns the left and right motors.
+ */
+public class TiltController {
+
+    // Same motors as the left and right control areas
+    static final int LEFT_MOTOR = 2;
+    static final int RIGHT_MOTOR = 1;
+
+    private static final int SAMPLING_PERIOD_US = 20000;
+    private static final int MAX_REPORT_LATENCY_US = 100000;
+    static final long TICK_MS = 50;
+
+    // Gravity along an axis in m/s^2 that gives full power, roughly a 30 degree tilt
+    private static final float FULL_TILT = 4.9f;
+    private static final float DEAD_ZONE = 0.1f;
+
+    private final SensorManager sensorManager;
+    private final Sensor sensor;
+    private final Display display;
+    private final DeviceMessageSender messageSender;
+    private final Metrics metrics = Metrics.getInstance();
+
+    private TiltThread tiltThread;
+
+    public TiltController(Context context, DeviceMessageSender messageSender) {
+        this(context, messageSender, chooseSensor(
+                (SensorManager) context.getSystemService(Context.SENSOR_SERVICE)));
+    }
+
+    TiltController(Context context, DeviceMessageSender messageSender, Sensor sensor) {
+        this.messageSender = messageSender;
+        this.sensor = sensor;
+        sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+    }
+
+    /**
+     * Prefers the accelerometer. The gravity sensor is usually fused in software from the
+     * accelerometer and the gyro, which keeps the gyro powered and often has no hardware FIFO,
+     * so the report latency would be ignored. Gravity is only used when it can be batched and
+     * the accelerometer can not, or when there is no accelerometer. Averaging the samples of a
+     * tick filters out most of the linear acceleration the accelerometer also sees.
+     */
+    private static Sensor chooseSensor(SensorManager sensorManager) {
+        Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        Sensor gravity = sensorManager.getDefaultSensor(Sensor.TYPE_GRAVITY);
+        if (accelerometer == null) {
+            return gravity;
+        }
+        if (accelerometer.getFifoMaxEventCount() == 0
+                && gravity != null && gravity.getFifoMaxEventCount() > 0) {
+            return gravity;
+        }
+        return accelerometer;
+    }
+
+    public boolean isAvailable() {
+        return sensor != null;
+    }
+
+    public boolean drivesMotor(int motor) {
+        return tiltThread != null && (motor == LEFT_MOTOR || motor == RIGHT_MOTOR);
+    }
+
+    public void start() {
+        if (tiltThread != null || sensor == null) {
+            return;
+        }
+        tiltThread = new TiltThread(display.getRotation());
+        tiltThread.start();
+        tiltThread.handler = new Handler(tiltThread.getLooper());
+        registerListener(tiltThread, tiltThread.handler);
+    }
+
+    void registerListener(SensorEventListener listener, Handler handler) {
+        sensorManager.registerListener(listener, sensor, SAMPLING_PERIOD_US,
+                MAX_REPORT_LATENCY_US, handler);
+    }
+
+    /**
+     * Stops the tilt thread and then stops the motors on the calling thread, so the stop commands
+     * are sent before the caller can tear down the connection.
+     */
+    public void stop() {
+        if (tiltThread == null) {
+            return;
+        }
+        sensorManager.unregisterListener(tiltThread);
+        tiltThread.quitSafely();
+        try {
+            tiltThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tiltThread = null;
+
+        messageSender.driveMotor(LEFT_MOTOR, (byte) 0);
+        messageSender.driveMotor(RIGHT_MOTOR, (byte) 0);
+    }
+
+    private static byte toLevel(float value) {
+        if (Math.abs(value) < DEAD_ZONE) {
+            return 0;
+        }
+        if (value > 1.0f) {
+            value = 1.0f;
+        } else if (value < -1.0f) {
+            value = -1.0f;
+        }
+        return (byte) (value * 100);
+    }
+
+    private class TiltThread extends HandlerThread implements SensorEventListener {
+        private final int rotation;
+        private Handler handler;
+
+        // Only touched on this thread
+        private float sumX;
+        private float sumY;
+        private int samples;
+        private boolean tickPending;
+
+        public TiltThread(int rotation) {
+            super("TiltThread");
+            this.rotation = rotation;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            // Sensor axes follow the device, turn them to follow the screen
+            float x = event.values[0];
+            float y = event.values[1];
+            switch (rotation) {
+            case Surface.ROTATION_90:
+                sumX += -y;
+                sumY += x;
+                break;
+            case Surface.ROTATION_180:
+                sumX += -x;
+                sumY += -y;
+                break;
+            case Surface.ROTATION_270:
+                sumX += y;
+                sumY += -x;
+                break;
+            default:
+                sumX += x;
+                sumY += y;
+                break;
+            }
+            samples++;
+            metrics.tiltSamples.increment();
+
+            // Only schedule a tick while samples arrive, so an idle phone is not woken up.
+            if (!tickPending) {
+                tickPending = true;
+                handler.postDelayed(tick, TICK_MS);
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+
+        private final Runnable tick = new Runnable() {
+            @Override
+            public void run() {
+                tickPending = false;
+                if (samples == 0) {
+                    return;
+                }
+
+                // Top edge of the screen down gives negative y, like pushing the sticks up.
+                // Right edge of the screen down gives negative x and turns right.
+                float drive = sumY / samples / FULL_TILT;
+                float turn = -sumX / samples / FULL_TILT;
+                sumX = 0;
+                sumY = 0;
+                samples = 0;
+
+                messageSender.driveMotor(LEFT_MOTOR, toLevel(drive - turn));
+                messageSender.driveMotor(RIGHT_MOTOR, toLevel(drive + turn));
+                metrics.tiltUpdates.increment();
+            }
+        };
+    }
+}
@@ -0,0 +1,73 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.os.SystemClock;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SystemClock.sleep is shadowed by ShadowSystemClock and only moves the clock forward.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class MetricsTest {
+
+    private Metrics.Counter counter;
+
+    @Before
+    public void setUp() {
+        // Start at a second boundary so each sleep moves to a known bucket
+        SystemClock.sleep(1000 - SystemClock.elapsedRealtime() % 1000);
+        counter = new Metrics.Counter("test");
+    }
+
+    @Test
+    public void currentSecondIsExcluded() {
+        counter.add(5);
+
+        assertEquals(5, counter.getTotal());
+        assertEquals(0, counter.getLastSecond());
+        assertEquals(0, counter.getLastMinute());
+
+        SystemClock.sleep(1000);
+
+        assertEquals(5, counter.getLastSecond());
+        assertEquals(5, counter.getLastMinute());
+    }
+
+    @Test
+    public void bucketOlderThanMinuteIsDropped() {
+        counter.add(3);
+
+        SystemClock.sleep(60 * 1000);
+        assertEquals(0, counter.getLastSecond());
+        assertEquals(3, counter.getLastMinute());
+
+        SystemClock.sleep(1000);
+        assertEquals(0, counter.getLastMinute());
+        assertEquals(3, counter.getTotal());
+    }
+
+    @Test
+    public void reusedBucketIsResetOnRollover() {
+        counter.add(2);
+        SystemClock.sleep(1000);
+        counter.increment();
+
+        // Same bucket as the first add, one minute later
+        SystemClock.sleep(59 * 1000);
+        counter.add(4);
+
+        assertEquals(7, counter.getTotal());
+        assertEquals(1, counter.getLastMinute());
+
+        SystemClock.sleep(1000);
+        assertEquals(4, counter.getLastSecond());
+        assertEquals(5, counter.getLastMinute());
+    }
+}
@@ -0,0 +1,142 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowActivity;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.app.Activity;
+import android.bluetooth.BluetoothAdapter;
+import android.content.ComponentName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class StartupTraceTest {
+
+    private final List<Runnable> pending = new ArrayList<>();
+    private final Executor queueingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            pending.add(command);
+        }
+    };
+    private Executor defaultBluetoothExecutor;
+    private Executor defaultPairedDevicesExecutor;
+    private StartupTrace trace;
+
+    @Before
+    public void setUp() {
+        trace = StartupTrace.getInstance();
+        trace.reset();
+        defaultBluetoothExecutor = MainActivity.bluetoothExecutor;
+        defaultPairedDevicesExecutor = DeviceConnectorActivity.pairedDevicesExecutor;
+        MainActivity.bluetoothExecutor = queueingExecutor;
+        DeviceConnectorActivity.pairedDevicesExecutor = queueingExecutor;
+    }
+
+    @After
+    public void tearDown() {
+        MainActivity.bluetoothExecutor = defaultBluetoothExecutor;
+        DeviceConnectorActivity.pairedDevicesExecutor = defaultPairedDevicesExecutor;
+        trace.reset();
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+        ShadowLooper.idleMainLooper();
+    }
+
+    @Test
+    public void onCreateRecordsPhasesWithoutWaitingForBluetooth() {
+        Robolectric.buildActivity(MainActivity.class).create();
+
+        StartupTrace.Phase onCreate = trace.getPhase("MainActivity.onCreate");
+        StartupTrace.Phase layout = trace.getPhase("MainActivity.setContentView");
+        assertNotNull(onCreate);
+        assertNotNull(layout);
+        assertTrue(layout.startMillis >= onCreate.startMillis);
+        assertTrue(layout.durationMicros <= onCreate.durationMicros);
+
+        assertEquals(1, pending.size());
+        assertNull(trace.getPhase("MainActivity.bluetoothReady"));
+    }
+
+    @Test
+    public void bluetoothReadyIsMarkedAfterAdapterLookup() {
+        Robolectric.buildActivity(MainActivity.class).create();
+        runPending();
+
+        StartupTrace.Phase onCreate = trace.getPhase("MainActivity.onCreate");
+        StartupTrace.Phase lookup = trace.getPhase("MainActivity.initBluetooth");
+        StartupTrace.Phase ready = trace.getPhase("MainActivity.bluetoothReady");
+        assertNotNull(lookup);
+        assertNotNull(ready);
+        assertTrue(ready.startMillis >= onCreate.startMillis);
+        assertEquals(0, ready.durationMicros);
+    }
+
+    @Test
+    public void firstLaunchOpensPickerAfterBluetoothIsReady() {
+        shadowOf(BluetoothAdapter.getDefaultAdapter()).setEnabled(true);
+        MainActivity activity = Robolectric.buildActivity(MainActivity.class).create().start().get();
+        assertNull(shadowOf(activity).getNextStartedActivityForResult());
+
+        runPending();
+
+        ShadowActivity.IntentForResult picker = shadowOf(activity).getNextStartedActivityForResult();
+        assertNotNull(picker);
+        assertEquals(new ComponentName(activity, DeviceConnectorActivity.class),
+                picker.intent.getComponent());
+    }
+
+    @Test
+    public void pickerRecordsPairedDeviceLookup() {
+        DeviceConnectorActivity picker = Robolectric.buildActivity(DeviceConnectorActivity.class).create().get();
+        assertNotNull(trace.getPhase("DeviceConnectorActivity.onCreate"));
+        assertFalse(picker.findViewById(R.id.button_scan).isEnabled());
+
+        runPending();
+
+        assertNotNull(trace.getPhase("DeviceConnectorActivity.loadPairedDevices"));
+        assertTrue(picker.findViewById(R.id.button_scan).isEnabled());
+    }
+
+    @Test
+    public void phasesAreNotRecordedAfterPickerIsCancelled() {
+        shadowOf(BluetoothAdapter.getDefaultAdapter()).setEnabled(true);
+        MainActivity activity = Robolectric.buildActivity(MainActivity.class).create().start().get();
+        runPending();
+
+        ShadowActivity.IntentForResult picker = shadowOf(activity).getNextStartedActivityForResult();
+        Robolectric.buildActivity(DeviceConnectorActivity.class).create();
+        runPending();
+        shadowOf(activity).receiveResult(picker.intent, Activity.RESULT_CANCELED, null);
+
+        assertNotNull(trace.getPhase("DeviceConnectorActivity.loadPairedDevices"));
+        assertNotNull(trace.getPhase("MainActivity.deviceNotSelected"));
+        int count = trace.getPhases().size();
+
+        Robolectric.buildActivity(MainActivity.class).create();
+        runPending();
+
+        assertEquals(count, trace.getPhases().size());
+    }
+}
@@ -0,0 +1,165 @@
+package fi.robotuprising.rdd.dancerobotremote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Surface;
+import android.view.WindowManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class)
+public class TiltControllerTest {
+
+    private final RecordingSender sender = new RecordingSender();
+    private TiltController controller;
+    private SensorEventListener listener;
+    private Looper looper;
+
+    private static class RecordingSender extends DeviceMessageSender {
+        final List<String> commands = new ArrayList<>();
+
+        RecordingSender() {
+            super(null);
+        }
+
+        @Override
+        public void driveMotor(int motor, byte power) {
+            commands.add(motor + ":" + power);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (controller != null) {
+            controller.stop();
+        }
+    }
+
+    private void start(int rotation) {
+        WindowManager windowManager = (WindowManager) RuntimeEnvironment.application
+                .getSystemService(Context.WINDOW_SERVICE);
+        shadowOf(windowManager.getDefaultDisplay()).setRotation(rotation);
+
+        Sensor sensor = ReflectionHelpers.callConstructor(Sensor.class);
+        controller = new TiltController(RuntimeEnvironment.application, sender, sensor) {
+            @Override
+            void registerListener(SensorEventListener l, Handler handler) {
+                listener = l;
+                looper = handler.getLooper();
+            }
+        };
+        controller.start();
+    }
+
+    private void feed(float x, float y) {
+        SensorEvent event = ReflectionHelpers.callConstructor(SensorEvent.class,
+                ClassParameter.from(int.class, 3));
+        event.values[0] = x;
+        event.values[1] = y;
+        event.values[2] = 9.8f;
+        listener.onSensorChanged(event);
+    }
+
+    private void tick() {
+        shadowOf(looper).getScheduler().advanceBy(TiltController.TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private List<String> commands(String... commands) {
+        return Arrays.asList(commands);
+    }
+
+    @Test
+    public void batchIsFoldedIntoOneUpdatePerTick() {
+        start(Surface.ROTATION_0);
+        feed(0f, -2f);
+        feed(0f, -3f);
+        feed(0f, -2.5f);
+        assertTrue(sender.commands.isEmpty());
+
+        tick();
+        assertEquals(commands("2:-51", "1:-51"), sender.commands);
+
+        // No samples, no update
+        tick();
+        assertEquals(2, sender.commands.size());
+    }
+
+    @Test
+    public void rightEdgeDownTurnsRight() {
+        start(Surface.ROTATION_0);
+        feed(-1f, -2f);
+        feed(-1f, -3f);
+        tick();
+
+        assertEquals(commands("2:-71", "1:-30"), sender.commands);
+    }
+
+    @Test
+    public void landscapeUsesScreenAxes() {
+        start(Surface.ROTATION_90);
+        feed(-2f, 0f);
+        feed(-3f, 0f);
+        feed(-2.5f, 0f);
+        tick();
+        feed(-2.5f, 1f);
+        feed(-2.5f, 1f);
+        tick();
+
+        assertEquals(commands("2:-51", "1:-51", "2:-71", "1:-30"), sender.commands);
+    }
+
+    @Test
+    public void smallTiltIsInsideDeadZone() {
+        start(Surface.ROTATION_0);
+        feed(0.3f, -0.3f);
+        feed(-0.2f, 0.2f);
+        tick();
+
+        assertEquals(commands("2:0", "1:0"), sender.commands);
+    }
+
+    @Test
+    public void steepTiltIsClampedToFullPower() {
+        start(Surface.ROTATION_0);
+        feed(0f, -20f);
+        tick();
+
+        assertEquals(commands("2:-100", "1:-100"), sender.commands);
+    }
+
+    @Test
+    public void stopSendsZeroToBothMotorsAndDropsPendingTick() {
+        start(Surface.ROTATION_0);
+        assertTrue(controller.drivesMotor(TiltController.LEFT_MOTOR));
+        assertTrue(controller.drivesMotor(TiltController.RIGHT_MOTOR));
+        assertFalse(controller.drivesMotor(0));
+
+        feed(0f, -2.5f);
+        controller.stop();
+
+        assertEquals(commands("2:0", "1:0"), sender.commands);
+        assertFalse(controller.drivesMotor(TiltController.LEFT_MOTOR));
+    }
+}